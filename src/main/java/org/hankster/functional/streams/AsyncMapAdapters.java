@@ -0,0 +1,229 @@
+package org.hankster.functional.streams;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.FluentIterable;
+import com.google.common.util.concurrent.*;
+import org.hankster.functional.functions.UniFunction;
+
+import javax.annotation.Nonnull;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Adapters for mapping a function over a FluentIterable or Stream with a bounded number of calls in flight on a given
+ * Executor.  This is meant for I/O bound functions (remote lookups and the like), where Stream.parallel() is the wrong
+ * tool since its concurrency is tied to the common ForkJoinPool and to the number of CPUs.
+ * <p>
+ * Results are produced lazily: nothing is submitted until the result is iterated, and at most maxInFlight calls are
+ * outstanding at any time.  If the function throws, the calls still outstanding are cancelled and the exception is
+ * rethrown from the iteration, wrapped in an UncheckedExecutionException (or ExecutionError).  Closing a returned Stream
+ * cancels its outstanding calls, so a Stream that may not be consumed to the end (findFirst(), limit(), etc.) should be
+ * used in a try-with-resources block.  Abandoning a FluentIterable iteration early leaves at most maxInFlight calls to
+ * finish in the background.
+ */
+public interface AsyncMapAdapters {
+
+    /**
+     * Map a function over a Stream, running up to maxInFlight calls at once on the given Executor.  Results are
+     * produced in the encounter order of the source stream, so one slow call holds back the results behind it.
+     * @param stream      the source stream
+     * @param function    the function to apply to each element
+     * @param maxInFlight the maximum number of calls outstanding at once
+     * @param executor    the Executor on which to run the calls, see {@link Helpers#defaultExecutor()}
+     * @param <T>         type of the source elements
+     * @param <R>         type of the results
+     * @return a sequential Stream of the results, in source order
+     */
+    @Nonnull
+    static <T, R> Stream<R> mapAsync(@Nonnull Stream<T> stream,
+                                     @Nonnull UniFunction<? super T, ? extends R> function,
+                                     int maxInFlight,
+                                     @Nonnull Executor executor) {
+        return Helpers.mapAsync(stream, function, maxInFlight, executor, true);
+    }
+
+    /**
+     * Map a function over a Stream, running up to maxInFlight calls at once on the given Executor.  Results are
+     * produced in the order in which the calls complete.
+     * @param stream      the source stream
+     * @param function    the function to apply to each element
+     * @param maxInFlight the maximum number of calls outstanding at once
+     * @param executor    the Executor on which to run the calls, see {@link Helpers#defaultExecutor()}
+     * @param <T>         type of the source elements
+     * @param <R>         type of the results
+     * @return a sequential, unordered Stream of the results
+     */
+    @Nonnull
+    static <T, R> Stream<R> mapAsyncUnordered(@Nonnull Stream<T> stream,
+                                              @Nonnull UniFunction<? super T, ? extends R> function,
+                                              int maxInFlight,
+                                              @Nonnull Executor executor) {
+        return Helpers.mapAsync(stream, function, maxInFlight, executor, false);
+    }
+
+    /**
+     * Map a function over an Iterable, running up to maxInFlight calls at once on the given Executor.  Results are
+     * produced in the iteration order of the source, so one slow call holds back the results behind it.  Each
+     * iteration of the returned FluentIterable applies the function again.
+     * @param iterable    the source Iterable, such as a FluentIterable
+     * @param function    the function to apply to each element
+     * @param maxInFlight the maximum number of calls outstanding at once
+     * @param executor    the Executor on which to run the calls, see {@link Helpers#defaultExecutor()}
+     * @param <T>         type of the source elements
+     * @param <R>         type of the results
+     * @return a FluentIterable of the results, in source order
+     */
+    @Nonnull
+    static <T, R> FluentIterable<R> mapAsync(@Nonnull Iterable<T> iterable,
+                                             @Nonnull UniFunction<? super T, ? extends R> function,
+                                             int maxInFlight,
+                                             @Nonnull Executor executor) {
+        return Helpers.mapAsync(iterable, function, maxInFlight, executor, true);
+    }
+
+    /**
+     * Map a function over an Iterable, running up to maxInFlight calls at once on the given Executor.  Results are
+     * produced in the order in which the calls complete.  Each iteration of the returned FluentIterable applies the
+     * function again.
+     * @param iterable    the source Iterable, such as a FluentIterable
+     * @param function    the function to apply to each element
+     * @param maxInFlight the maximum number of calls outstanding at once
+     * @param executor    the Executor on which to run the calls, see {@link Helpers#defaultExecutor()}
+     * @param <T>         type of the source elements
+     * @param <R>         type of the results
+     * @return a FluentIterable of the results, in completion order
+     */
+    @Nonnull
+    static <T, R> FluentIterable<R> mapAsyncUnordered(@Nonnull Iterable<T> iterable,
+                                                      @Nonnull UniFunction<? super T, ? extends R> function,
+                                                      int maxInFlight,
+                                                      @Nonnull Executor executor) {
+        return Helpers.mapAsync(iterable, function, maxInFlight, executor, false);
+    }
+
+    interface Helpers {
+
+        /**
+         * An Executor suitable for I/O bound calls.  When running on a JDK with virtual threads, each call gets its
+         * own virtual thread.  Otherwise calls run on a shared cached pool of daemon threads.
+         * @return the shared default Executor
+         */
+        @Nonnull
+        static Executor defaultExecutor() {
+            return DefaultExecutorHolder.EXECUTOR;
+        }
+
+        @Nonnull
+        static <T, R> Stream<R> mapAsync(@Nonnull Stream<T> stream,
+                                         @Nonnull Function<? super T, ? extends R> function,
+                                         int maxInFlight,
+                                         @Nonnull Executor executor,
+                                         boolean preserveOrder) {
+            Preconditions.checkArgument(maxInFlight > 0, "maxInFlight must be positive");
+            // maxInFlight is only a cap, so the window grows with the calls actually submitted
+            Set<ListenableFuture<R>> outstanding = new LinkedHashSet<>();
+            Iterator<R> iterator = mapAsyncIterator(stream.iterator(), function, maxInFlight, executor, preserveOrder, outstanding);
+            Spliterator<R> spliterator = Spliterators.spliteratorUnknownSize(iterator, preserveOrder ? Spliterator.ORDERED : 0);
+            return StreamSupport.stream(spliterator, false)
+                    .onClose(() -> cancelAll(outstanding))
+                    .onClose(stream::close);
+        }
+
+        @Nonnull
+        static <T, R> FluentIterable<R> mapAsync(@Nonnull Iterable<T> iterable,
+                                                 @Nonnull Function<? super T, ? extends R> function,
+                                                 int maxInFlight,
+                                                 @Nonnull Executor executor,
+                                                 boolean preserveOrder) {
+            Preconditions.checkArgument(maxInFlight > 0, "maxInFlight must be positive");
+            Iterable<R> mapped = () -> mapAsyncIterator(iterable.iterator(), function, maxInFlight, executor, preserveOrder,
+                    new LinkedHashSet<>());
+            return FluentIterable.from(mapped);
+        }
+
+        // keeps a window of up to maxInFlight submitted calls in outstanding, topping it up from the source each time a
+        // result is taken.  outstanding is an insertion-ordered set of the (identity-equal) tasks, so ordered mode can
+        // take the oldest call and unordered mode can drop whichever call completes first, both in constant time.
+        // Any failure cancels the calls still outstanding before it is rethrown.
+        @Nonnull
+        static <T, R> Iterator<R> mapAsyncIterator(@Nonnull Iterator<T> source,
+                                                   @Nonnull Function<? super T, ? extends R> function,
+                                                   int maxInFlight,
+                                                   @Nonnull Executor executor,
+                                                   boolean preserveOrder,
+                                                   @Nonnull Set<ListenableFuture<R>> outstanding) {
+            BlockingQueue<ListenableFuture<R>> completed = new LinkedBlockingQueue<>();
+            return new AbstractIterator<R>() {
+                @Override
+                protected R computeNext() {
+                    try {
+                        while (outstanding.size() < maxInFlight && source.hasNext()) {
+                            T t = source.next();
+                            ListenableFutureTask<R> task = ListenableFutureTask.create(() -> function.apply(t));
+                            if (!preserveOrder) {
+                                task.addListener(() -> completed.add(task), MoreExecutors.directExecutor());
+                            }
+                            // only track the task once the executor has accepted it
+                            executor.execute(task);
+                            outstanding.add(task);
+                        }
+                        if (outstanding.isEmpty()) {
+                            return endOfData();
+                        }
+                        ListenableFuture<R> next;
+                        if (preserveOrder) {
+                            Iterator<ListenableFuture<R>> oldest = outstanding.iterator();
+                            next = oldest.next();
+                            oldest.remove();
+                        } else {
+                            next = Uninterruptibles.takeUninterruptibly(completed);
+                            outstanding.remove(next);
+                        }
+                        return Futures.getUnchecked(next);
+                    } catch (RuntimeException | Error e) {
+                        cancelAll(outstanding);
+                        throw e;
+                    }
+                }
+            };
+        }
+
+        static void cancelAll(@Nonnull Collection<? extends Future<?>> outstanding) {
+            outstanding.forEach(future -> future.cancel(true));
+            outstanding.clear();
+        }
+
+        // holds the default Executor so that it is only created, once, when first asked for
+        final class DefaultExecutorHolder {
+            private static final Executor EXECUTOR;
+
+            static {
+                Executor executor;
+                try {
+                    // looked up reflectively so that this still compiles and runs on Java 8
+                    executor = (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+                } catch (ReflectiveOperationException e) {
+                    executor = Executors.newCachedThreadPool(
+                            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("async-map-%d").build());
+                }
+                EXECUTOR = executor;
+            }
+
+            private DefaultExecutorHolder() {
+            }
+        }
+    }
+}
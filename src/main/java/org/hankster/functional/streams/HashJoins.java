@@ -0,0 +1,203 @@
+package org.hankster.functional.streams;
+
+import com.google.common.collect.*;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+import java.util.stream.Stream;
+
+/**
+ * Hash joins between two streams of records.  The smaller ("build") side is collected once into an index keyed by the
+ * join key, and the larger ("probe") side is streamed past it.  Since the index is never modified after it is built,
+ * the probe side may be a parallel stream.
+ * <p>
+ * Joined records are emitted as Map.Entry pairs, with the probe record as the key and the build record as the value.
+ */
+public interface HashJoins {
+
+    /**
+     * Build a join index from the build side of a join.  Records sharing a key are kept in encounter order.
+     * @param buildSide the smaller side of the join
+     * @param buildKey  A function that supplies the join key of a build side record
+     * @param <B>       type of the build side records
+     * @param <K>       type of the join key
+     * @return an ImmutableListMultimap from join key to build side records
+     */
+    @Nonnull
+    static <B, K> ListMultimap<K, B> index(@Nonnull Stream<B> buildSide,
+                                           @Nonnull Function<? super B, ? extends K> buildKey) {
+        return buildSide.collect(MoreCollectors.toImmutableListMultimap(buildKey, Function.identity()));
+    }
+
+    /**
+     * Build a join index from the build side of a join, such as a FluentIterable
+     * @param buildSide the smaller side of the join
+     * @param buildKey  A function that supplies the join key of a build side record
+     * @param <B>       type of the build side records
+     * @param <K>       type of the join key
+     * @return an ImmutableListMultimap from join key to build side records
+     */
+    @Nonnull
+    static <B, K> ListMultimap<K, B> index(@Nonnull Iterable<B> buildSide,
+                                           @Nonnull Function<? super B, ? extends K> buildKey) {
+        return index(StreamAdapters.Helpers.fromIterable(buildSide), buildKey);
+    }
+
+    /**
+     * Build a join index whose hash table is presized for the expected number of keys, so that it is not rehashed while
+     * the index is built, and whose per-key lists are presized for the expected number of records per key and trimmed
+     * once built.  The records are gathered into a pair of flat arrays (concatenated across the forks of a parallel
+     * stream) and inserted into the index once, at the end, so no per-record entry objects are kept along the way.
+     * <p>
+     * This is not more compact than {@link #index(Stream, Function)}: the result is a HashMap of ArrayLists behind an
+     * unmodifiable view, whereas an ImmutableListMultimap already stores exactly sized lists.  Use it when the sizes are
+     * known up front and build time matters more than the footprint of the finished index.  The expected sizes are
+     * only hints; the index still holds every record if they are exceeded.
+     * @param buildSide            the smaller side of the join
+     * @param buildKey             A function that supplies the join key of a build side record
+     * @param expectedKeys         the expected number of distinct join keys
+     * @param expectedValuesPerKey the expected number of build side records per join key
+     * @param <B>                  type of the build side records
+     * @param <K>                  type of the join key
+     * @return an unmodifiable ListMultimap from join key to build side records, in encounter order for each key
+     */
+    @Nonnull
+    static <B, K> ListMultimap<K, B> presizedIndex(@Nonnull Stream<B> buildSide,
+                                                   @Nonnull Function<? super B, ? extends K> buildKey,
+                                                   int expectedKeys,
+                                                   int expectedValuesPerKey) {
+        return buildSide.collect(Helpers.toPresizedListMultimap(buildKey, Function.identity(), expectedKeys, expectedValuesPerKey));
+    }
+
+    /**
+     * Build a presized join index from the build side of a join, such as a FluentIterable.
+     * See {@link #presizedIndex(Stream, Function, int, int)}.
+     * @param buildSide            the smaller side of the join
+     * @param buildKey             A function that supplies the join key of a build side record
+     * @param expectedKeys         the expected number of distinct join keys
+     * @param expectedValuesPerKey the expected number of build side records per join key
+     * @param <B>                  type of the build side records
+     * @param <K>                  type of the join key
+     * @return an unmodifiable ListMultimap from join key to build side records, in encounter order for each key
+     */
+    @Nonnull
+    static <B, K> ListMultimap<K, B> presizedIndex(@Nonnull Iterable<B> buildSide,
+                                                   @Nonnull Function<? super B, ? extends K> buildKey,
+                                                   int expectedKeys,
+                                                   int expectedValuesPerKey) {
+        return presizedIndex(StreamAdapters.Helpers.fromIterable(buildSide), buildKey, expectedKeys, expectedValuesPerKey);
+    }
+
+    /**
+     * Inner join of the probe side against an index: each probe record is paired with every build side record that
+     * shares its join key, and probe records without a match are dropped.
+     * @param probeSide the larger side of the join, which may be parallel
+     * @param probeKey  A function that supplies the join key of a probe side record
+     * @param index     an index of the build side, see {@link #index(Stream, Function)}
+     * @param <P>       type of the probe side records
+     * @param <B>       type of the build side records
+     * @param <K>       type of the join key
+     * @return a Stream of (probe record, build record) pairs
+     */
+    @Nonnull
+    static <P, B, K> Stream<Map.Entry<P, B>> innerJoin(@Nonnull Stream<P> probeSide,
+                                                       @Nonnull Function<? super P, ? extends K> probeKey,
+                                                       @Nonnull ListMultimap<K, B> index) {
+        return probeSide.flatMap(p -> index.get(probeKey.apply(p)).stream().map(b -> Maps.immutableEntry(p, b)));
+    }
+
+    /**
+     * Left outer join of the probe side against an index: each probe record is paired with every build side record
+     * that shares its join key, and probe records without a match are paired with null.
+     * @param probeSide the larger side of the join, which may be parallel
+     * @param probeKey  A function that supplies the join key of a probe side record
+     * @param index     an index of the build side, see {@link #index(Stream, Function)}
+     * @param <P>       type of the probe side records
+     * @param <B>       type of the build side records
+     * @param <K>       type of the join key
+     * @return a Stream of (probe record, build record or null) pairs
+     */
+    @Nonnull
+    static <P, B, K> Stream<Map.Entry<P, B>> leftJoin(@Nonnull Stream<P> probeSide,
+                                                      @Nonnull Function<? super P, ? extends K> probeKey,
+                                                      @Nonnull ListMultimap<K, B> index) {
+        return probeSide.flatMap(p -> {
+            List<B> matches = index.get(probeKey.apply(p));
+            return matches.isEmpty()
+                    ? Stream.of(Maps.<P, B>immutableEntry(p, null))
+                    : matches.stream().map(b -> Maps.immutableEntry(p, b));
+        });
+    }
+
+    /**
+     * Inner join of the probe side against an index, collected into a Table whose rows are identified by the probe
+     * records and whose columns are identified by the build records.  Pass a parallel probe side to collect in parallel.
+     * @param probeSide     the larger side of the join, which may be parallel
+     * @param probeKey      A function that supplies the join key of a probe side record
+     * @param index         an index of the build side, see {@link #index(Stream, Function)}
+     * @param probeIdentity A function that supplies the row key of a probe side record
+     * @param buildIdentity A function that supplies the column key of a build side record
+     * @param <P>           type of the probe side records
+     * @param <B>           type of the build side records
+     * @param <K>           type of the join key
+     * @param <R>           type of the row keys
+     * @param <C>           type of the column keys
+     * @return a Table of the joined (probe record, build record) pairs
+     * @throws IllegalStateException if two joined pairs share both a row key and a column key
+     */
+    @Nonnull
+    static <P, B, K, R, C> Table<R, C, Map.Entry<P, B>> innerJoinToTable(@Nonnull Stream<P> probeSide,
+                                                                         @Nonnull Function<? super P, ? extends K> probeKey,
+                                                                         @Nonnull ListMultimap<K, B> index,
+                                                                         @Nonnull Function<? super P, ? extends R> probeIdentity,
+                                                                         @Nonnull Function<? super B, ? extends C> buildIdentity) {
+        return innerJoin(probeSide, probeKey, index)
+                .collect(Helpers.toTableWithoutDuplicates(
+                        (Map.Entry<P, B> e) -> probeIdentity.apply(e.getKey()),
+                        e -> buildIdentity.apply(e.getValue())));
+    }
+
+    interface Helpers {
+        // like MoreCollectors.toTable, except that a second value for a cell is an error rather than a silent overwrite
+        @Nonnull
+        static <T, R, C> Collector<T, ?, Table<R, C, T>> toTableWithoutDuplicates(@Nonnull Function<? super T, ? extends R> rowKeyExtractor,
+                                                                                  @Nonnull Function<? super T, ? extends C> columnKeyExtractor) {
+            return Collector.of(
+                    HashBasedTable::create,
+                    (Table<R, C, T> table, T t) -> putUnique(table, rowKeyExtractor.apply(t), columnKeyExtractor.apply(t), t),
+                    MoreCollectors.Helpers.mergeWith((left, right) ->
+                            right.cellSet().forEach(cell -> putUnique(left, cell.getRowKey(), cell.getColumnKey(), cell.getValue()))));
+        }
+
+        static <R, C, V> void putUnique(@Nonnull Table<R, C, V> table, @Nonnull R rowKey, @Nonnull C columnKey, @Nonnull V value) {
+            V previous = table.put(rowKey, columnKey, value);
+            if (previous != null) {
+                MoreCollectors.Helpers.alwaysThrow(previous, value);
+            }
+        }
+
+        // only the finished multimap is presized: forks append to flat key and value arrays, which merge by array copy
+        @Nonnull
+        static <T, K, V> Collector<T, ?, ListMultimap<K, V>> toPresizedListMultimap(@Nonnull Function<? super T, ? extends K> keyExtractor,
+                                                                                    @Nonnull Function<? super T, ? extends V> valueExtractor,
+                                                                                    int expectedKeys,
+                                                                                    int expectedValuesPerKey) {
+            return Collector.of(
+                    (Supplier<KeyValueBuffer<K, V>>) KeyValueBuffer::new,
+                    (buffer, t) -> buffer.add(keyExtractor.apply(t), valueExtractor.apply(t)),
+                    KeyValueBuffer::addAll,
+                    buffer -> {
+                        ArrayListMultimap<K, V> m = ArrayListMultimap.create(expectedKeys, expectedValuesPerKey);
+                        for (int i = 0; i < buffer.size(); i++) {
+                            m.put(buffer.keyAt(i), buffer.valueAt(i));
+                        }
+                        m.trimToSize();
+                        return Multimaps.unmodifiableListMultimap(m);
+                    });
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package org.hankster.functional.streams;
+
+import com.google.common.collect.ImmutableSortedMap;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.function.BinaryOperator;
+
+/**
+ * A growable pair of parallel flat arrays of keys and values, used as the accumulation type of collectors that only
+ * need to organize their input once, when the collector finishes.  Appending a pair allocates nothing beyond the
+ * occasional growth of the arrays, and buffers from the forks of a parallel stream merge by array copy.
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+final class KeyValueBuffer<K, V> {
+    private static final int INITIAL_CAPACITY = 16;
+
+    // the largest array size that all VMs will allocate
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    private Object[] keys = new Object[INITIAL_CAPACITY];
+    private Object[] values = new Object[INITIAL_CAPACITY];
+    private int size;
+
+    void add(K key, V value) {
+        ensureCapacity(size + 1);
+        keys[size] = key;
+        values[size] = value;
+        size++;
+    }
+
+    @Nonnull
+    KeyValueBuffer<K, V> addAll(@Nonnull KeyValueBuffer<K, V> other) {
+        ensureCapacity(size + other.size);
+        System.arraycopy(other.keys, 0, keys, size, other.size);
+        System.arraycopy(other.values, 0, values, size, other.size);
+        size += other.size;
+        return this;
+    }
+
+    int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    K keyAt(int index) {
+        return (K) keys[index];
+    }
+
+    @SuppressWarnings("unchecked")
+    V valueAt(int index) {
+        return (V) values[index];
+    }
+
+    /**
+     * Sort the pairs by key (stably, so pairs with equal keys stay in the order they were added) and combine the values
+     * of each run of equal keys with the merge function.
+     * @param comparator    the ordering of the keys
+     * @param mergeFunction combines the values of pairs whose keys compare as equal
+     * @return an ImmutableSortedMap of the distinct keys
+     */
+    @Nonnull
+    ImmutableSortedMap<K, V> toImmutableSortedMap(@Nonnull Comparator<? super K> comparator,
+                                                 @Nonnull BinaryOperator<V> mergeFunction) {
+        int[] order = sortedOrder(comparator);
+        // Guava has no public factory taking already sorted key and value arrays, so this goes through the builder,
+        // which costs one more pass over the distinct keys: put() allocates an entry per key, and build() copies the
+        // entries into its own array, sorts them again (linear time, since they are already in order) and checks them
+        // for duplicates before splitting them into the map's key and value arrays.
+        ImmutableSortedMap.Builder<K, V> builder = new ImmutableSortedMap.Builder<>(comparator);
+        int i = 0;
+        while (i < size) {
+            K key = keyAt(order[i]);
+            V value = valueAt(order[i]);
+            while (++i < size && comparator.compare(key, keyAt(order[i])) == 0) {
+                value = mergeFunction.apply(value, valueAt(order[i]));
+            }
+            builder.put(key, value);
+        }
+        return builder.build();
+    }
+
+    // a permutation of the indexes of the pairs that visits the keys in order, ties in the order the pairs were added
+    @Nonnull
+    private int[] sortedOrder(@Nonnull Comparator<? super K> comparator) {
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        mergeSort(order, new int[size], 0, size, comparator);
+        return order;
+    }
+
+    // top-down merge sort of order[from, to), which is stable and does not box the indexes
+    private void mergeSort(@Nonnull int[] order, @Nonnull int[] scratch, int from, int to, @Nonnull Comparator<? super K> comparator) {
+        if (to - from < 2) {
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(order, scratch, from, mid, comparator);
+        mergeSort(order, scratch, mid, to, comparator);
+        if (comparator.compare(keyAt(order[mid - 1]), keyAt(order[mid])) <= 0) {
+            return; // the halves are already in order
+        }
+        System.arraycopy(order, from, scratch, from, to - from);
+        int left = from;
+        int right = mid;
+        int out = from;
+        while (left < mid && right < to) {
+            order[out++] = comparator.compare(keyAt(scratch[right]), keyAt(scratch[left])) < 0 ? scratch[right++] : scratch[left++];
+        }
+        System.arraycopy(scratch, left, order, out, mid - left);
+        System.arraycopy(scratch, right, order, out + mid - left, to - right);
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity < 0 || minCapacity > MAX_CAPACITY) {
+            // minCapacity is negative when size + other.size overflowed
+            throw new OutOfMemoryError("Too many entries to buffer");
+        }
+        if (minCapacity > keys.length) {
+            int newCapacity = (int) Math.min(MAX_CAPACITY, Math.max(minCapacity, (long) keys.length + (keys.length >> 1)));
+            keys = Arrays.copyOf(keys, newCapacity);
+            values = Arrays.copyOf(values, newCapacity);
+        }
+    }
+}
@@ -3,9 +3,17 @@ package org.hankster.functional.streams;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.*;
 import com.google.common.collect.ImmutableMap.Builder;
+import com.google.common.hash.Funnel;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.primitives.Ints;
 
 import javax.annotation.Nonnull;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.*;
 import java.util.stream.Collector;
 import java.util.stream.Collector.Characteristics;
@@ -75,6 +83,41 @@ public interface MoreCollectors {
                 Helpers.UNORDERED_ID_FINISH_CONCURRENT);
     }
 
+    /**
+     * Collector for counting into a Guava Multiset from a parallel stream whose elements are heavily skewed toward a few
+     * hot values.  Counts are kept in a LongAdder per distinct element, so threads incrementing the same element spread
+     * across separate cells instead of contending on a single counter as they do with {@link #toConcurrentMultiset()}.
+     * The cells are folded into a HashMultiset when the collector finishes.  Only the counting is concurrent: the
+     * resulting HashMultiset is not thread-safe (use {@link #toConcurrentMultiset()} for a ConcurrentHashMultiset).
+     * @param <T> The upstream type
+     * @return a Multiset&lt;T&gt;
+     * @throws IllegalArgumentException if the count of any element exceeds Integer.MAX_VALUE
+     */
+    @Nonnull
+    static <T> Collector<T, ?, Multiset<T>> toStripedMultiset() {
+        return Helpers.toStripedCounts(cells -> {
+            Multiset<T> multiset = HashMultiset.create(cells.size());
+            Helpers.forEachCount(cells, multiset::add);
+            return multiset;
+        });
+    }
+
+    /**
+     * Collector for counting into a Guava ImmutableMultiset from a parallel stream whose elements are heavily skewed
+     * toward a few hot values.  See {@link #toStripedMultiset()}.
+     * @param <T> The upstream type
+     * @return an ImmutableMultiset&lt;T&gt;
+     * @throws IllegalArgumentException if the count of any element exceeds Integer.MAX_VALUE
+     */
+    @Nonnull
+    static <T> Collector<T, ?, ImmutableMultiset<T>> toStripedImmutableMultiset() {
+        return Helpers.toStripedCounts(cells -> {
+            ImmutableMultiset.Builder<T> builder = ImmutableMultiset.builder();
+            Helpers.forEachCount(cells, builder::addCopies);
+            return builder.build();
+        });
+    }
+
     /**
      * Collector for collecting to a Guava Multiset, using LinkedHashMultiset as its implementation.  Because
      * LinkedHashMultiset preserves encounter order, this collector will signal the Stream being collected to avoid
@@ -116,12 +159,88 @@ public interface MoreCollectors {
         return Helpers.toCollectionWithComparator(TreeMultiset::create, comparator);
     }
 
+    /**
+     * Collector for collecting to a Guava ImmutableSortedSet, where set contents are in their "natural" order.
+     * Elements are appended to a flat list and sorted and deduplicated once when the collector finishes, so no
+     * intermediate tree is built.
+     * @param <C> Type of element in the set.  Must be a Comparable.
+     * @return an ImmutableSortedSet sorted in the "Natural order"
+     */
+    @Nonnull
+    static <C extends Comparable<C>> Collector<C, ?, ImmutableSortedSet<C>> toImmutableSortedSet() {
+        return toImmutableSortedSet(Ordering.natural());
+    }
+
+    /**
+     * Collector for collecting to a Guava ImmutableSortedSet ordered by the given comparator.  Elements are appended to
+     * a flat list and sorted and deduplicated once when the collector finishes, so no intermediate tree is built.
+     * When several elements compare as equal, the first one encountered is kept.
+     * @param comparator the ordering of the resulting set
+     * @param <T> The upstream type
+     * @return an ImmutableSortedSet ordered by the given comparator
+     */
+    @Nonnull
+    static <T> Collector<T, ?, ImmutableSortedSet<T>> toImmutableSortedSet(@Nonnull Comparator<? super T> comparator) {
+        return Collector.of(
+                (Supplier<List<T>>) ArrayList::new,
+                List::add,
+                Helpers.mergeWith(List::addAll),
+                list -> ImmutableSortedSet.copyOf(comparator, list));
+    }
+
+    /**
+     * Collector for collecting to a Guava ImmutableSortedMap ordered by the given key comparator.  Keys and values are
+     * appended to a pair of parallel flat arrays, parallel forks are merged by array copy, and the pairs are sorted once
+     * (through an int index permutation) when the collector finishes.  Values whose keys compare as equal are combined
+     * in encounter order with the given merge function.  Accumulating allocates no per-element objects, so unlike
+     * collecting to a TreeMap and copying it, no tree nodes are built; the arrays do hold every pair until the collector
+     * finishes, though, where a TreeMap only holds one node per distinct key.
+     * @param keyExtractor   A function that supplies the map keys
+     * @param valueExtractor A function that supplies the map values
+     * @param comparator     the ordering of the map keys
+     * @param mergeFunction  combines the values of entries whose keys compare as equal
+     * @param <T>            The upstream type
+     * @param <K>            The map key type
+     * @param <V>            The map value type
+     * @return an ImmutableSortedMap&lt;K,V&gt;
+     */
+    @Nonnull
+    static <T, K, V> Collector<T, ?, ImmutableSortedMap<K, V>> toImmutableSortedMap(@Nonnull Function<? super T, ? extends K> keyExtractor,
+                                                                                  @Nonnull Function<? super T, ? extends V> valueExtractor,
+                                                                                  @Nonnull Comparator<? super K> comparator,
+                                                                                  @Nonnull BinaryOperator<V> mergeFunction) {
+        return Collector.of(
+                (Supplier<KeyValueBuffer<K, V>>) KeyValueBuffer::new,
+                (buffer, t) -> buffer.add(keyExtractor.apply(t), valueExtractor.apply(t)),
+                KeyValueBuffer::addAll,
+                buffer -> buffer.toImmutableSortedMap(comparator, mergeFunction));
+    }
+
     @Nonnull
     static <T, K, V> Collector<T, ?, Multimap<K, V>> toHashMultimap(@Nonnull Function<? super T, ? extends K> keyExtractor,
                                                                     @Nonnull Function<? super T, ? extends V> valueExtractor) {
         return Helpers.toMultimap(keyExtractor, valueExtractor, HashMultimap::create);
     }
 
+    /**
+     * Collector for collecting to a Guava ImmutableListMultimap, which keeps values in encounter order for each key
+     * @param keyExtractor   A function that supplies the multimap keys
+     * @param valueExtractor A function that supplies the multimap values
+     * @param <T>            The upstream type
+     * @param <K>            The multimap key type
+     * @param <V>            The multimap value type
+     * @return an ImmutableListMultimap&lt;K,V&gt;
+     */
+    @Nonnull
+    static <T, K, V> Collector<T, ?, ImmutableListMultimap<K, V>> toImmutableListMultimap(@Nonnull Function<? super T, ? extends K> keyExtractor,
+                                                                                        @Nonnull Function<? super T, ? extends V> valueExtractor) {
+        return Collector.of(
+                ImmutableListMultimap::builder,
+                (ImmutableListMultimap.Builder<K, V> b, T t) -> b.put(keyExtractor.apply(t), valueExtractor.apply(t)),
+                (b1, b2) -> b1.putAll(b2.build()),
+                ImmutableListMultimap.Builder::build);
+    }
+
     @Nonnull
     static <T, K, V> Collector<T, ?, Multimap<K, V>> toLinkedListMultimap(@Nonnull Function<? super T, ? extends K> keyExtractor,
                                                                           @Nonnull Function<? super T, ? extends V> valueExtractor) {
@@ -167,6 +286,48 @@ public interface MoreCollectors {
         return Helpers.toTable(rowKeyExtractor, columnKeyExtractor, cellValueExtractor, TreeBasedTable::create);
     }
 
+    /**
+     * Collector for computing an order-independent fingerprint of the stream's elements.  Each element is fed through
+     * the funnel into the hash function, and the per-element hashes are summed byte by byte, giving the same result
+     * as {@link com.google.common.hash.Hashing#combineUnordered(Iterable)} without materializing the hashes.  Because
+     * the result does not depend on encounter order, parallel streams may split and combine freely, and memory use is
+     * constant per fork.  An empty stream yields a HashCode of all zero bytes.
+     * @param funnel       feeds each element into the hash function
+     * @param hashFunction the hash function to apply to each element
+     * @param <T>          The upstream type
+     * @return a HashCode with the same width as the hash function
+     */
+    @Nonnull
+    static <T> Collector<T, ?, HashCode> toUnorderedHash(@Nonnull Funnel<? super T> funnel,
+                                                         @Nonnull HashFunction hashFunction) {
+        return Collector.of(
+                () -> new byte[hashFunction.bits() / Byte.SIZE],
+                (byte[] sum, T t) -> Helpers.addBytewise(sum, hashFunction.hashObject(t, funnel).asBytes()),
+                Helpers.mergeWith(Helpers::addBytewise),
+                HashCode::fromBytes,
+                Characteristics.UNORDERED);
+    }
+
+    /**
+     * Collector for computing a fingerprint of the stream's elements that depends on their encounter order.  Each
+     * element is fed through the funnel into the hash function, and the per-element hashes are combined positionally
+     * as a polynomial, which (unlike {@link com.google.common.hash.Hashing#combineOrdered(Iterable)}) can be split
+     * across the forks of a parallel stream and recombined in order.  Memory use is constant per fork.
+     * @param funnel       feeds each element into the hash function
+     * @param hashFunction the hash function to apply to each element, and to the combined result
+     * @param <T>          The upstream type
+     * @return a HashCode with the same width as the hash function
+     */
+    @Nonnull
+    static <T> Collector<T, ?, HashCode> toOrderedHash(@Nonnull Funnel<? super T> funnel,
+                                                       @Nonnull HashFunction hashFunction) {
+        return Collector.of(
+                () -> Helpers.newOrderedHashAccumulator(hashFunction.bits()),
+                (long[] acc, T t) -> Helpers.appendOrderedHash(acc, hashFunction.hashObject(t, funnel).asBytes()),
+                Helpers.mergeWith(Helpers::appendOrderedHashes),
+                acc -> Helpers.finishOrderedHash(acc, hashFunction));
+    }
+
     // there is no concept of "private" in an interface so helper functions that would be private if this were a class go in this sub-interface.
     // Some of them are useful in their own right, so having them exposed is not a bad thing.
     interface Helpers {
@@ -339,6 +500,76 @@ public interface MoreCollectors {
             return toCollection(() -> factory.apply(comparator), false);
         }
 
+        // odd multiplier for the positional combination of element hashes (the 64-bit golden ratio)
+        long ORDERED_HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+        static void addBytewise(@Nonnull byte[] sum, @Nonnull byte[] addend) {
+            for (int i = 0; i < sum.length; i++) {
+                sum[i] += addend[i];
+            }
+        }
+
+        // the ordered hash accumulator holds one polynomial per 64 bits of hash, followed by the multiplier raised to
+        // the number of elements accumulated so far
+        @Nonnull
+        static long[] newOrderedHashAccumulator(int bits) {
+            long[] acc = new long[(bits + Long.SIZE - 1) / Long.SIZE + 1];
+            acc[acc.length - 1] = 1L;
+            return acc;
+        }
+
+        static void appendOrderedHash(@Nonnull long[] acc, @Nonnull byte[] hash) {
+            int lanes = acc.length - 1;
+            for (int i = 0; i < lanes; i++) {
+                acc[i] *= ORDERED_HASH_MULTIPLIER;
+            }
+            for (int i = 0; i < hash.length; i++) {
+                acc[i / Long.BYTES] += (hash[i] & 0xffL) << (Byte.SIZE * (i % Long.BYTES));
+            }
+            acc[lanes] *= ORDERED_HASH_MULTIPLIER;
+        }
+
+        static void appendOrderedHashes(@Nonnull long[] left, @Nonnull long[] right) {
+            int lanes = left.length - 1;
+            for (int i = 0; i < lanes; i++) {
+                left[i] = left[i] * right[lanes] + right[i];
+            }
+            left[lanes] *= right[lanes];
+        }
+
+        @Nonnull
+        static HashCode finishOrderedHash(@Nonnull long[] acc, @Nonnull HashFunction hashFunction) {
+            Hasher hasher = hashFunction.newHasher();
+            for (long lane : acc) {
+                hasher.putLong(lane);
+            }
+            return hasher.hash();
+        }
+
+        // the accumulator is a concurrent map from element to a striped long counter, which the finisher turns into the result
+        @Nonnull
+        static <T, R> Collector<T, ?, R> toStripedCounts(@Nonnull Function<ConcurrentMap<T, LongAdder>, R> finisher) {
+            return Collector.of(
+                    (Supplier<ConcurrentMap<T, LongAdder>>) ConcurrentHashMap::new,
+                    Helpers::incrementCount,
+                    mergeWith((left, right) -> right.forEach((t, cell) -> left.computeIfAbsent(t, k -> new LongAdder()).add(cell.sum()))),
+                    finisher,
+                    Characteristics.UNORDERED, Characteristics.CONCURRENT);
+        }
+
+        static <T> void incrementCount(@Nonnull ConcurrentMap<T, LongAdder> cells, @Nonnull T t) {
+            // look up first, since computeIfAbsent may lock the bin even when the element is already present
+            LongAdder cell = cells.get(t);
+            if (cell == null) {
+                cell = cells.computeIfAbsent(t, k -> new LongAdder());
+            }
+            cell.increment();
+        }
+
+        static <T> void forEachCount(@Nonnull Map<T, LongAdder> cells, @Nonnull ObjIntConsumer<T> consumer) {
+            cells.forEach((t, cell) -> consumer.accept(t, Ints.checkedCast(cell.sum())));
+        }
+
         @Nonnull
         static <T> T alwaysThrow(@Nonnull T t1, @Nonnull T t2) {
             throw new IllegalStateException("Duplicates not allowed");
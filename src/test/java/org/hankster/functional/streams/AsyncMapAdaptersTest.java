@@ -0,0 +1,164 @@
+package org.hankster.functional.streams;
+
+import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.hankster.functional.functions.UniFunction;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class AsyncMapAdaptersTest {
+
+    @Test
+    public void testMapAsyncPreservesOrder() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            Random random = new Random();
+            List<Integer> result = AsyncMapAdapters.mapAsync(IntStream.range(0, 100).boxed(), i -> {
+                sleepQuietly(random.nextInt(5));
+                return i * 2;
+            }, 8, executor).collect(Collectors.toList());
+
+            assertEquals(IntStream.range(0, 100).map(i -> i * 2).boxed().collect(Collectors.toList()), result);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testMapAsyncUnorderedBoundsInFlightCalls() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxSeen = new AtomicInteger();
+        UniFunction<Integer, Integer> lookup = i -> {
+            maxSeen.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            sleepQuietly(2);
+            inFlight.decrementAndGet();
+            return i;
+        };
+
+        int sum = AsyncMapAdapters.mapAsyncUnordered(IntStream.range(0, 200).boxed(), lookup, 4,
+                AsyncMapAdapters.Helpers.defaultExecutor())
+                .mapToInt(Integer::intValue)
+                .sum();
+
+        assertEquals(IntStream.range(0, 200).sum(), sum);
+        assertTrue(maxSeen.get() <= 4);
+        assertTrue(maxSeen.get() > 1);
+    }
+
+    @Test
+    public void testMapAsyncFluentIterableIsLazy() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        FluentIterable<String> mapped = AsyncMapAdapters.mapAsync(FluentIterable.from(ImmutableList.of("a", "b", "c")), s -> {
+            calls.incrementAndGet();
+            return s.toUpperCase();
+        }, 2, AsyncMapAdapters.Helpers.defaultExecutor());
+
+        assertEquals(0, calls.get());
+        assertEquals(ImmutableList.of("A", "B", "C"), mapped.toList());
+        assertEquals(3, calls.get());
+    }
+
+    @Test(expected = UncheckedExecutionException.class)
+    public void testMapAsyncRethrowsFailures() throws Exception {
+        AsyncMapAdapters.mapAsyncUnordered(ImmutableList.of(1, 0, 2), i -> 10 / i, 2,
+                AsyncMapAdapters.Helpers.defaultExecutor())
+                .toList();
+    }
+
+    @Test
+    public void testMapAsyncWithUnboundedMaxInFlight() throws Exception {
+        List<Integer> result = AsyncMapAdapters.mapAsync(Stream.of(1, 2, 3), i -> i * 2, Integer.MAX_VALUE,
+                AsyncMapAdapters.Helpers.defaultExecutor())
+                .collect(Collectors.toList());
+        assertEquals(ImmutableList.of(2, 4, 6), result);
+        assertEquals(ImmutableList.of(2, 4, 6), AsyncMapAdapters.mapAsync(ImmutableList.of(1, 2, 3), i -> i * 2,
+                Integer.MAX_VALUE, AsyncMapAdapters.Helpers.defaultExecutor()).toList());
+    }
+
+    @Test
+    public void testNonPositiveMaxInFlightIsRejectedAtCallTime() throws Exception {
+        Stream<Integer> source = Stream.of(1, 2, 3);
+        try {
+            AsyncMapAdapters.mapAsync(source, i -> i, 0, AsyncMapAdapters.Helpers.defaultExecutor());
+            fail("expected a Stream with maxInFlight 0 to be rejected");
+        } catch (IllegalArgumentException expected) {
+            assertEquals(3, source.count()); // the source was not consumed
+        }
+        try {
+            AsyncMapAdapters.mapAsyncUnordered(ImmutableList.of(1, 2, 3), i -> i, 0, AsyncMapAdapters.Helpers.defaultExecutor());
+            fail("expected an Iterable with maxInFlight 0 to be rejected");
+        } catch (IllegalArgumentException expected) {
+            // rejected before any iteration
+        }
+    }
+
+    @Test
+    public void testClosingStreamCancelsOutstandingCalls() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        AtomicInteger finished = new AtomicInteger();
+        try (Stream<Integer> mapped = AsyncMapAdapters.mapAsync(IntStream.range(0, 100).boxed(), i -> {
+            if (i > 0) {
+                sleepQuietly(10000);
+                if (!Thread.currentThread().isInterrupted()) {
+                    finished.incrementAndGet();
+                }
+            }
+            return i;
+        }, 5, executor)) {
+            assertEquals(0, (int) mapped.findFirst().get());
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(0, finished.get());
+    }
+
+    @Test
+    public void testFailureCancelsOutstandingCalls() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        AtomicInteger finished = new AtomicInteger();
+        try {
+            AsyncMapAdapters.mapAsync(ImmutableList.of(0, 1, 2, 3), i -> {
+                if (i > 0) {
+                    sleepQuietly(10000);
+                    if (!Thread.currentThread().isInterrupted()) {
+                        finished.incrementAndGet();
+                    }
+                }
+                return 10 / i;
+            }, 4, executor).toList();
+            fail("expected the division by zero to be rethrown");
+        } catch (UncheckedExecutionException expected) {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+            assertEquals(0, finished.get());
+        }
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testRejectedCallIsRethrown() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+        AsyncMapAdapters.mapAsync(ImmutableList.of(1, 2, 3), i -> i, 2, executor).toList();
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package org.hankster.functional.streams;
+
+import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Table;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class HashJoinsTest {
+
+    @Test
+    public void testInnerJoin() throws Exception {
+        ListMultimap<Integer, String> index = HashJoins.index(Stream.of("a", "bb", "cc", "dddd"), String::length);
+        List<Map.Entry<Integer, String>> joined = HashJoins.innerJoin(IntStream.range(0, 5).boxed(), Function.identity(), index)
+                .collect(Collectors.toList());
+
+        assertEquals(4, joined.size());
+        assertEquals("bb", joined.get(1).getValue());
+        assertEquals("cc", joined.get(2).getValue());
+        assertEquals(4, (int) joined.get(3).getKey());
+    }
+
+    @Test
+    public void testLeftJoin() throws Exception {
+        ListMultimap<Integer, String> index = HashJoins.index(FluentIterable.from(Lists.newArrayList("a", "bb", "cc")), String::length);
+        List<Map.Entry<Integer, String>> joined = HashJoins.leftJoin(IntStream.range(0, 4).boxed(), Function.identity(), index)
+                .collect(Collectors.toList());
+
+        assertEquals(5, joined.size());
+        assertEquals(0, (int) joined.get(0).getKey());
+        assertNull(joined.get(0).getValue());
+        assertEquals("a", joined.get(1).getValue());
+        assertNull(joined.get(4).getValue());
+    }
+
+    @Test
+    public void testPresizedIndexInnerJoinToTable() throws Exception {
+        ListMultimap<Integer, Integer> index = HashJoins.presizedIndex(IntStream.range(0, 1000).boxed(), i -> i % 10, 10, 100);
+        assertEquals(100, index.get(3).size());
+
+        Table<Integer, Integer, Map.Entry<Integer, Integer>> table =
+                HashJoins.innerJoinToTable(IntStream.range(0, 20).boxed().parallel(), i -> i % 10, index, Function.identity(), Function.identity());
+
+        assertEquals(2000, table.size());
+        assertEquals(100, table.row(13).size());
+        assertEquals((Integer) 13, table.get(13, 993).getKey());
+        assertNull(table.get(13, 994));
+    }
+
+    @Test
+    public void testInnerJoinToTableLeavesProbeSideSequential() throws Exception {
+        ListMultimap<Integer, String> index = HashJoins.index(Stream.of("a", "bb"), String::length);
+        Stream<Integer> probeSide = IntStream.range(0, 3).boxed();
+        HashJoins.innerJoinToTable(probeSide, Function.identity(), index, Function.identity(), Function.identity());
+        assertFalse(probeSide.isParallel());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testInnerJoinToTableRejectsDuplicateCells() throws Exception {
+        ListMultimap<Integer, String> index = HashJoins.index(Stream.of("bb", "cc"), String::length);
+        HashJoins.innerJoinToTable(Stream.of(2), Function.identity(), index, Function.identity(), String::length);
+    }
+
+    @Test
+    public void testPresizedIndexMatchesIndex() throws Exception {
+        List<Integer> records = new Random(3).ints(10000, 0, 1000).boxed().collect(Collectors.toList());
+        ListMultimap<Integer, Integer> expected = HashJoins.index(records.stream(), i -> i % 10);
+
+        // same records in the same per-key encounter order as index(), even when built in parallel
+        assertEquals(expected, HashJoins.presizedIndex(records.parallelStream(), i -> i % 10, 10, 1000));
+        // the expected sizes are only hints
+        assertEquals(expected, HashJoins.presizedIndex(records.parallelStream(), i -> i % 10, 1, 1));
+
+        ListMultimap<Integer, String> fromIterable = HashJoins.presizedIndex(FluentIterable.from(Lists.newArrayList("a", "bb", "cc")), String::length, 2, 2);
+        assertEquals(Lists.newArrayList("bb", "cc"), fromIterable.get(2));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testPresizedIndexIsUnmodifiable() throws Exception {
+        HashJoins.presizedIndex(Stream.of("a", "bb"), String::length, 2, 1).put(3, "ccc");
+    }
+}
@@ -1,14 +1,27 @@
 package org.hankster.functional.streams;
 
 import com.google.common.collect.BiMap;
+import com.google.common.collect.ImmutableMultiset;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Multiset;
 import com.google.common.collect.Table;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
 import org.junit.Test;
 
 import java.lang.Character.UnicodeBlock;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.TreeMap;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -47,6 +60,42 @@ public class MoreCollectorsTest {
         assertEquals(100000,multiset.size());
     }
 
+    @Test
+    public void testToStripedMultiset() throws Exception {
+        // correctness check only (counts match toMultiset), using Zipfian (s = 1) keys so that a few hot keys take most
+        // of the increments from every thread.  It does not measure how the collector scales.
+        int keys = 1000;
+        double[] cumulative = new double[keys];
+        double total = 0;
+        for (int k = 0; k < keys; k++) {
+            total += 1.0 / (k + 1);
+            cumulative[k] = total;
+        }
+        double harmonic = total;
+        List<Integer> events = new Random(42).doubles(200000)
+                .mapToObj(d -> {
+                    int k = Arrays.binarySearch(cumulative, d * harmonic);
+                    return k >= 0 ? k : Math.min(keys - 1, -k - 1);
+                })
+                .collect(Collectors.toList());
+
+        Multiset<Integer> expected = events.stream().collect(toMultiset());
+        Multiset<Integer> multiset = events.parallelStream().collect(toStripedMultiset());
+        assertEquals(expected, multiset);
+        assertEquals(200000, multiset.size());
+        assertTrue(multiset.count(0) > multiset.count(1));
+        assertTrue(multiset.count(0) > 10 * multiset.count(99));
+    }
+
+    @Test
+    public void testToStripedImmutableMultiset() throws Exception {
+        ImmutableMultiset<String> multiset = new Random().ints(100000, 0, 10).boxed().parallel()
+                .collect(Collectors.mapping(i -> i < 9 ? "hot" : "cold", toStripedImmutableMultiset()));
+        assertEquals(100000, multiset.size());
+        assertEquals(2, multiset.elementSet().size());
+        assertTrue(multiset.count("hot") > multiset.count("cold"));
+    }
+
     @Test
     public void testToLinkedMultiset() throws Exception {
         Multiset<String> multiset = Stream.of("C","A","B","A","B","C","C","A","A").collect(toLinkedMultiset());
@@ -72,6 +121,53 @@ public class MoreCollectorsTest {
         assertEquals(2,multiset.count("a"));
     }
 
+    @Test
+    public void testToImmutableSortedSet() throws Exception {
+        ImmutableSortedSet<String> set = Stream.of("C","A","B","A","B","C","C","A","A").parallel().collect(toImmutableSortedSet());
+        assertEquals(ImmutableSortedSet.of("A", "B", "C"), set);
+        assertEquals("A", set.first());
+    }
+
+    @Test
+    public void testToImmutableSortedSetWithComparator() throws Exception {
+        ImmutableSortedSet<String> set = Stream.of("b","C","a","B","A").collect(toImmutableSortedSet(String.CASE_INSENSITIVE_ORDER));
+        assertEquals(3, set.size());
+        assertEquals("a", set.first());
+        assertEquals("C", set.last());
+    }
+
+    @Test
+    public void testToImmutableSortedMap() throws Exception {
+        ImmutableSortedMap<Integer, Integer> sumsByRemainder =
+                IntStream.range(0, 10000)
+                        .boxed()
+                        .parallel()
+                        .collect(toImmutableSortedMap(i -> i % 7, Function.identity(), Comparator.reverseOrder(), Integer::sum));
+
+        assertEquals(7, sumsByRemainder.size());
+        assertEquals(6, (int) sumsByRemainder.firstKey());
+        assertEquals(IntStream.range(0, 10000).filter(i -> i % 7 == 3).sum(), (int) sumsByRemainder.get(3));
+    }
+
+    @Test
+    public void testToImmutableSortedMapMergesInEncounterOrder() throws Exception {
+        ImmutableSortedMap<String, String> concatenated = Stream.of("b1", "a1", "b2", "a2", "b3")
+                .collect(toImmutableSortedMap(s -> s.substring(0, 1), s -> s.substring(1), Comparator.naturalOrder(), String::concat));
+        assertEquals("12", concatenated.get("a"));
+        assertEquals("123", concatenated.get("b"));
+    }
+
+    @Test
+    public void testToImmutableSortedMapMatchesTreeMap() throws Exception {
+        List<Integer> values = new Random(7).ints(20000, 0, 500).boxed().collect(Collectors.toList());
+        Map<Integer, String> expected = values.stream()
+                .collect(Collectors.toMap(i -> i % 97, String::valueOf, (a, b) -> a + ',' + b, TreeMap::new));
+
+        ImmutableSortedMap<Integer, String> sortedMap = values.parallelStream()
+                .collect(toImmutableSortedMap(i -> i % 97, String::valueOf, Comparator.naturalOrder(), (a, b) -> a + ',' + b));
+        assertEquals(expected, sortedMap);
+    }
+
     @Test
     public void testToLinkedListMultimap() throws Exception {
         Multimap<UnicodeBlock, Integer> unicodeBlockMembers =
@@ -127,4 +223,29 @@ public class MoreCollectorsTest {
         assertFalse(nybbles.isEmpty());
         assertEquals((Integer) 0xab, nybbles.get(0xa, 0xb));
     }
+
+    @Test
+    public void testToUnorderedHash() throws Exception {
+        HashFunction murmur = Hashing.murmur3_128();
+        List<Integer> values = IntStream.range(0, 10000).boxed().collect(Collectors.toList());
+        HashCode expected = Hashing.combineUnordered(values.stream().map(murmur::hashInt).collect(Collectors.toList()));
+
+        assertEquals(expected, values.parallelStream().collect(toUnorderedHash(Funnels.integerFunnel(), murmur)));
+        Collections.shuffle(values);
+        assertEquals(expected, values.stream().collect(toUnorderedHash(Funnels.integerFunnel(), murmur)));
+    }
+
+    @Test
+    public void testToOrderedHash() throws Exception {
+        HashFunction murmur = Hashing.murmur3_128();
+        List<Integer> values = IntStream.range(0, 10000).boxed().collect(Collectors.toList());
+        HashCode sequential = values.stream().collect(toOrderedHash(Funnels.integerFunnel(), murmur));
+
+        assertEquals(128, sequential.bits());
+        assertEquals(sequential, values.parallelStream().collect(toOrderedHash(Funnels.integerFunnel(), murmur)));
+        Collections.swap(values, 17, 4242);
+        assertNotEquals(sequential, values.parallelStream().collect(toOrderedHash(Funnels.integerFunnel(), murmur)));
+        assertNotEquals(Stream.of(0).collect(toOrderedHash(Funnels.integerFunnel(), murmur)),
+                Stream.of(0, 0).collect(toOrderedHash(Funnels.integerFunnel(), murmur)));
+    }
 }